@@ -0,0 +1,79 @@
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+
+//Compares the combined title+contents query against running a title search and then a contents search,
+//for each of the five query types. Times are averaged over many runs after a warmup so the JIT and OS cache settle,
+//and the two sides take turns going first so neither always gets the other's warm cache.
+public class BenchmarkMultiField {
+    static final int WARMUP_RUNS = 50;
+    static final int TIMED_RUNS = 200;
+    static final int TOP_K = 10;
+
+    public static void main(String[] args) throws Exception {
+        String indexPath = "E:\\IR Project\\citeseer2_index";
+        String[][] queries = {                                  //{query, option}; options match the GUI's curOption
+                {"neural network", "0"},
+                {"information retrieval evaluation", "0"},
+                {"neur* network", "0"},
+                {"deep neural network training", "1"},
+                {"infor* retriev*", "2"},
+                {"support machine", "3"},
+                {"support ? machine", "4"},
+        };
+
+        SearchIndexedDocs indexSearcher = new SearchIndexedDocs(indexPath);
+        IndexSearcher searcher = indexSearcher.getSearcher();
+
+        System.out.printf("%-35s %-7s %12s %15s %15s%n", "query", "option", "hits", "sequential ms", "combined ms");
+        for (String[] q : queries) {
+            String userQuery = q[0];
+            int option = Integer.parseInt(q[1]);
+            Query titleQuery = indexSearcher.buildQuery(userQuery, "title", option);
+            Query contentsQuery = indexSearcher.buildQuery(userQuery, "contents", option);
+            Query combinedQuery = indexSearcher.buildQuery(userQuery, SearchIndexedDocs.BOTH_FIELDS, option);
+
+            TopDocs combinedHits = searcher.search(combinedQuery, TOP_K);
+            if (combinedHits.totalHits.value == 0) {                //an empty query would just look fast
+                System.out.printf("%-35s %-7d %12s%n", userQuery, option, "no hits, skipped");
+                continue;
+            }
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                searcher.search(titleQuery, TOP_K);
+                searcher.search(contentsQuery, TOP_K);
+                searcher.search(combinedQuery, TOP_K);
+            }
+
+            long sequentialNanos = 0;
+            long combinedNanos = 0;
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                if (i % 2 == 0) {
+                    sequentialNanos += timeSequential(searcher, titleQuery, contentsQuery);
+                    combinedNanos += timeCombined(searcher, combinedQuery);
+                } else {
+                    combinedNanos += timeCombined(searcher, combinedQuery);
+                    sequentialNanos += timeSequential(searcher, titleQuery, contentsQuery);
+                }
+            }
+            double sequentialMs = sequentialNanos / 1e6 / TIMED_RUNS;
+            double combinedMs = combinedNanos / 1e6 / TIMED_RUNS;
+
+            System.out.printf("%-35s %-7d %12s %15.3f %15.3f%n", userQuery, option, combinedHits.totalHits, sequentialMs, combinedMs);
+        }
+    }
+
+    //what the user did before: two searches, one per field
+    static long timeSequential(IndexSearcher searcher, Query titleQuery, Query contentsQuery) throws Exception {
+        long start = System.nanoTime();
+        searcher.search(titleQuery, TOP_K);
+        searcher.search(contentsQuery, TOP_K);
+        return System.nanoTime() - start;
+    }
+
+    static long timeCombined(IndexSearcher searcher, Query combinedQuery) throws Exception {
+        long start = System.nanoTime();
+        searcher.search(combinedQuery, TOP_K);
+        return System.nanoTime() - start;
+    }
+}
\ No newline at end of file
@@ -17,6 +17,8 @@ public class GUI {
     private int curOption = 0;
     private String searchField = "contents";
     private Boolean matchCase = false;
+    private int sortMode = SearchIndexedDocs.SORT_RELEVANCE;
+    private int similarDoc = -1; //paper whose similar papers are listed, -1 while showing text search results
 
     public GUI() throws Exception {
         JFrame frame = new JFrame("Lucene Search");
@@ -32,7 +34,9 @@ public class GUI {
         JCheckBox checkBoxPhraseWc = new JCheckBox("Phrase*");
         JCheckBox checkBoxText = new JCheckBox("Text");
         JCheckBox checkBoxTitle = new JCheckBox("Title");
+        JCheckBox checkBoxBoth = new JCheckBox("Title+Text");
         JCheckBox checkBoxCase = new JCheckBox("Match Case");
+        JComboBox<String> sortBox = new JComboBox<>(new String[]{"Relevance", "Newest", "Quality (ties by newest)", "Relevance + Recency"}); //index matches SORT_*
 
         queryField = new JTextField(20);
         gbc.gridx = 0;
@@ -58,6 +62,12 @@ public class GUI {
         gbc.gridy = 1;
         frame.add(nextButton, gbc);
 
+        JButton similarButton = new JButton("Find Similar");
+        gbc.gridwidth = 1;
+        gbc.gridx = 4;
+        gbc.gridy = 1;
+        frame.add(similarButton, gbc);
+
         gbc.gridwidth = 1;
         gbc.gridx = 0;
         gbc.gridy = 2;
@@ -68,6 +78,11 @@ public class GUI {
         gbc.gridy = 2;
         frame.add(checkBoxTitle, gbc); //Title checkbox
 
+        gbc.gridwidth = 1;
+        gbc.gridx = 2;
+        gbc.gridy = 2;
+        frame.add(checkBoxBoth, gbc); //Title+Text checkbox
+
         gbc.gridwidth = 1;
         gbc.gridx = 0;
         gbc.gridy = 3;
@@ -93,6 +108,11 @@ public class GUI {
         gbc.gridy = 4;
         frame.add(checkBoxCase, gbc); //Text checkbox
 
+        gbc.gridwidth = 1;
+        gbc.gridx = 3;
+        gbc.gridy = 1;
+        frame.add(sortBox, gbc); //sort mode
+
         listModel = new DefaultListModel<>();
         resultList = new JList<>(listModel);
         resultList.setVisibleRowCount(10);
@@ -115,8 +135,9 @@ public class GUI {
                 try {
                     listModel.clear();
                     currentPage = 0;
+                    similarDoc = -1;
                     indexSearcher = new SearchIndexedDocs(index);
-                    indexSearcher.search(queryField.getText(), listModel, searchField, currentPage, resultsPerPage, curOption, matchCase);
+                    indexSearcher.search(queryField.getText(), listModel, searchField, currentPage, resultsPerPage, curOption, matchCase, sortMode);
                 } catch (Exception ex) {
                     ex.printStackTrace();
                 }
@@ -130,7 +151,7 @@ public class GUI {
                     currentPage--;
                     try {
                         listModel.clear();
-                        indexSearcher.search(queryField.getText(), listModel, searchField, currentPage, resultsPerPage, curOption, matchCase);
+                        showPage();
                     } catch (Exception ex) {
                         ex.printStackTrace();
                     }
@@ -144,7 +165,27 @@ public class GUI {
                 currentPage++;
                 try {
                     listModel.clear();
-                    indexSearcher.search(queryField.getText(), listModel, searchField, currentPage, resultsPerPage, curOption, matchCase);
+                    showPage();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+
+        similarButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int row = resultList.getSelectedIndex();          //any row of a result works, not just its title
+                if (indexSearcher == null || row < 0)
+                    return;
+                int docId = indexSearcher.getDocForRow(row);
+                if (docId < 0)
+                    return;
+                try {
+                    listModel.clear();
+                    similarDoc = docId;
+                    currentPage = 0;
+                    indexSearcher.findSimilar(similarDoc, listModel, currentPage, resultsPerPage);
                 } catch (Exception ex) {
                     ex.printStackTrace();
                 }
@@ -218,8 +259,9 @@ public class GUI {
                 if (checkBoxText.isSelected()) {
                     searchField = "contents";
                     checkBoxTitle.setSelected(false);
+                    checkBoxBoth.setSelected(false);
                 }
-                if (!checkBoxText.isSelected() && !checkBoxTitle.isSelected()) {
+                if (!checkBoxText.isSelected() && !checkBoxTitle.isSelected() && !checkBoxBoth.isSelected()) {
                     checkBoxText.setSelected(true); //default to searching contents
                 }
             }
@@ -231,8 +273,23 @@ public class GUI {
                 if (checkBoxTitle.isSelected()) {
                     searchField = "title";
                     checkBoxText.setSelected(false);
+                    checkBoxBoth.setSelected(false);
                 }
-                if (!checkBoxText.isSelected() && !checkBoxTitle.isSelected()) {
+                if (!checkBoxText.isSelected() && !checkBoxTitle.isSelected() && !checkBoxBoth.isSelected()) {
+                    checkBoxText.setSelected(true);
+                }
+            }
+        });
+
+        checkBoxBoth.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                if (checkBoxBoth.isSelected()) {
+                    searchField = SearchIndexedDocs.BOTH_FIELDS; //one combined query over title and contents
+                    checkBoxText.setSelected(false);
+                    checkBoxTitle.setSelected(false);
+                }
+                if (!checkBoxText.isSelected() && !checkBoxTitle.isSelected() && !checkBoxBoth.isSelected()) {
                     checkBoxText.setSelected(true);
                 }
             }
@@ -245,12 +302,27 @@ public class GUI {
             }
         });
 
+        sortBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                sortMode = sortBox.getSelectedIndex();
+            }
+        });
+
         checkBoxCase.setVisible(false); //case matching not too helpful for me
 
         frame.pack();
         frame.setVisible(true);
     }
 
+    //Previous/Next page through whichever list is showing: text search results or similar papers
+    private void showPage() throws Exception {
+        if (similarDoc >= 0)
+            indexSearcher.findSimilar(similarDoc, listModel, currentPage, resultsPerPage);
+        else
+            indexSearcher.search(queryField.getText(), listModel, searchField, currentPage, resultsPerPage, curOption, matchCase, sortMode);
+    }
+
     private static class HtmlListCellRenderer extends DefaultListCellRenderer {
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
@@ -1,24 +1,70 @@
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.document.*;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Fields;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermVectors;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class IndexAllFilesInDirectory {
     static int counter = 0;
+    static final long RECENCY_EPOCH_DAY = 16436;              //2015-01-01, recency feature counts days after this
+    static final String[] METADATA_KEYS = {"Published:", "Journal_Ref:", "DOI:", "Title:", "Abstract:"}; //arxiv scraper lines we use
+    static boolean skipNearDuplicates = true;
+    static final double DUPLICATE_THRESHOLD = 0.9;             //estimated shingle overlap above which a paper is a near-duplicate
+    static Map<String, List<int[]>> seenBands = new HashMap<>(); //LSH band -> signatures indexed so far (the index is rebuilt each run)
+    static final int TOP_TERMS = 25;                           //key terms stored per paper for "find similar"
+
+    //static per-document sort fields; the search side uses the same Sort so lucene can early terminate on a sorted index
+    public static Sort getIndexSort(String sortField) {
+        if (sortField == null || sortField.isEmpty())
+            return null;
+        if (sortField.equals("quality"))                                      //quality is only 0-2, so ties go to the newest paper
+            return new Sort(descending("quality"), descending("date"));
+        return new Sort(descending(sortField));
+    }
+
+    private static SortField descending(String field) {
+        SortField sf = new SortField(field, SortField.Type.LONG, true);       //true: newest / highest quality first
+        sf.setMissingValue(Long.MIN_VALUE);
+        return sf;
+    }
+
+    //days since RECENCY_EPOCH_DAY, at least 1 since feature values must be positive
+    public static long recencyDays(long epochMillis) {
+        return Math.max(1, epochMillis / 86400000L - RECENCY_EPOCH_DAY);
+    }
 
     public static void main(String[] args) throws Exception {
         String indexPath = "E:\\IR Project\\citeseer2_index"; // \\hamlet_index"; \\paperTitles_index";
         String docsPath = "E:\\IR Project\\citeseer2";        // \\hamletTest"; \\dlbp_title.txt";
+        String indexSortField = "date";                         //"date", "quality" or "" to keep insertion order (see README)
 
         System.out.println("Indexing to directory '" + indexPath + " '...");
         Directory dir = FSDirectory.open(Paths.get(indexPath));
@@ -43,8 +89,13 @@ public class IndexAllFilesInDirectory {
 
         IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
         //iwc.setSimilarity(new ClassicSimilarity());               //the similarity implementation of indexer and reader should always match
+        iwc.setOpenMode(OpenMode.CREATE);                           //always rebuild; an existing index can't change its index sort
+        Sort indexSort = getIndexSort(indexSortField);
+        if (indexSort != null)
+            iwc.setIndexSort(indexSort);                            //segments stay sorted so top-k by this field can stop early
         IndexWriter writer = new IndexWriter(dir, iwc);
         indexDocs(writer, Paths.get(docsPath));
+        storeTopTerms(writer);
         writer.close();
     }
 
@@ -72,12 +123,32 @@ public class IndexAllFilesInDirectory {
 
         BufferedReader br = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
         String title = br.readLine();
+        String contents = readBufferedReader(br);
 
         Document doc = new Document();
         doc.add(new StringField("path", file.toString(), Field.Store.YES));
 
         doc.add(new Field("title", title, fullField));                          //using my custom field type
-        doc.add(new Field("contents", readBufferedReader(br), fullField));
+        doc.add(new Field("contents", contents, fullField));
+
+        Map<String, String> metadata = getMetadata(contents);
+        long date = getDate(file, metadata);
+        long quality = getQuality(metadata);
+        doc.add(new NumericDocValuesField("date", date));                       //doc values for sorting, points for skipping
+        doc.add(new LongPoint("date", date));
+        doc.add(new StoredField("date", date));
+        doc.add(new NumericDocValuesField("quality", quality));
+        doc.add(new LongPoint("quality", quality));
+        doc.add(new FeatureField("features", "recency", recencyDays(date)));    //impact-aware, so blended queries can skip blocks
+
+        if (skipNearDuplicates) {
+            int[] signature = MinHashSignature.compute(writer.getAnalyzer(), "contents", getSketchText(title, contents, metadata));
+            if (signature != null && isNearDuplicate(signature, MinHashSignature.bandTerms(signature))) {
+                System.out.println("skipping near-duplicate " + file.getFileName());
+                return;
+            }
+        }
+        doc.add(new BinaryDocValuesField("topTerms", new BytesRef()));         //filled in by storeTopTerms once idf is known
 
         writer.addDocument(doc);
         counter++;
@@ -85,6 +156,130 @@ public class IndexAllFilesInDirectory {
             System.out.println("indexing " + counter + "-th file " + file.getFileName());
     }
 
+    //title and abstract only; the arxiv metadata lines (ids, links, dates, "None" fields) would skew the overlap
+    static String getSketchText(String title, String contents, Map<String, String> metadata) {
+        String metaTitle = metadata.get("Title:");
+        String abstractText = metadata.get("Abstract:");
+        if (metaTitle == null && abstractText == null)
+            return title + "\n" + contents;                           //citeseer style file: first line is the title, the rest is text
+        return (metaTitle == null ? "" : metaTitle) + "\n" + (abstractText == null ? "" : abstractText);
+    }
+
+    //second pass over the stored term vectors: each paper's top tf-idf terms go into the "topTerms" doc values
+    //as "term<tab>weight" lines, so "find similar" can build its query without re-analyzing the paper.
+    //idf needs the whole corpus, which is why this can't happen in indexDoc
+    static void storeTopTerms(IndexWriter writer) throws IOException {
+        writer.commit();
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            TermVectors termVectors = reader.termVectors();
+            StoredFields storedFields = reader.storedFields();
+            int numDocs = reader.numDocs();
+            for (int docId = 0; docId < reader.maxDoc(); docId++) {
+                Fields vectors = termVectors.get(docId);
+                if (vectors == null)
+                    continue;
+                Map<String, Double> weights = new HashMap<>();
+                for (String field : new String[]{"title", "contents"}) {
+                    Terms terms = vectors.terms(field);
+                    if (terms == null)
+                        continue;
+                    TermsEnum termsEnum = terms.iterator();
+                    BytesRef text;
+                    while ((text = termsEnum.next()) != null) {
+                        String term = text.utf8ToString();
+                        if (!isKeyTerm(term))
+                            continue;
+                        int df = reader.docFreq(new Term(field, text));
+                        if (df < 2)                                         //a term no other paper has can't find anything
+                            continue;
+                        double tfIdf = (1 + Math.log(termsEnum.totalTermFreq())) * Math.log((double) numDocs / df);
+                        weights.merge(term, tfIdf, Double::sum);
+                    }
+                }
+
+                List<Map.Entry<String, Double>> top = new ArrayList<>(weights.entrySet());
+                top.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < Math.min(TOP_TERMS, top.size()); i++) {
+                    if (top.get(i).getValue() <= 0)
+                        break;
+                    sb.append(top.get(i).getKey()).append('\t').append(top.get(i).getValue().floatValue()).append('\n');
+                }
+                String path = storedFields.document(docId, Set.of("path")).get("path");   //skip loading the full contents
+                writer.updateBinaryDocValue(new Term("path", path), "topTerms", new BytesRef(sb.toString()));
+                if ((docId + 1) % 1000 == 0)
+                    System.out.println("stored key terms for " + (docId + 1) + " files");
+            }
+        }
+    }
+
+    //skip stop words, short tokens, and anything with digits/punctuation (ids, urls, dates)
+    static boolean isKeyTerm(String term) {
+        if (term.length() < 3 || EnglishAnalyzer.ENGLISH_STOP_WORDS_SET.contains(term))
+            return false;
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isLetter(term.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    //only papers sharing an LSH band are compared, so this stays cheap as the index grows
+    static boolean isNearDuplicate(int[] signature, String[] bands) {
+        for (String band : bands) {
+            List<int[]> candidates = seenBands.get(band);
+            if (candidates == null)
+                continue;
+            for (int[] candidate : candidates) {
+                if (MinHashSignature.similarity(signature, candidate) >= DUPLICATE_THRESHOLD)
+                    return true;
+            }
+        }
+        for (String band : bands) {
+            seenBands.computeIfAbsent(band, k -> new ArrayList<>()).add(signature);
+        }
+        return false;
+    }
+
+    //submission date from the arxiv "Published:" line, otherwise the file's modified time
+    static long getDate(Path file, Map<String, String> metadata) throws IOException {
+        String published = metadata.get("Published:");
+        if (published != null) {
+            try {
+                return Instant.parse(published).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                System.out.println("Bad date in " + file.getFileName() + ": " + published);
+            }
+        }
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    //simple static quality score: a paper with a journal reference or DOI has been through peer review
+    static long getQuality(Map<String, String> metadata) {
+        long quality = 0;
+        String journalRef = metadata.get("Journal_Ref:");
+        if (journalRef != null && !journalRef.equals("None"))
+            quality++;
+        String doi = metadata.get("DOI:");
+        if (doi != null && !doi.equals("None"))
+            quality++;
+        return quality;
+    }
+
+    //one pass over the lines for all METADATA_KEYS; citeseer files have none of them, so the map stays empty
+    static Map<String, String> getMetadata(String contents) {
+        Map<String, String> metadata = new HashMap<>();
+        for (String line : contents.split("\\R")) {
+            for (String key : METADATA_KEYS) {
+                if (line.startsWith(key)) {
+                    metadata.putIfAbsent(key, line.substring(key.length()).trim());
+                    break;
+                }
+            }
+        }
+        return metadata;
+    }
+
     static void indexDocs(final IndexWriter writer , Path path) throws Exception {
         Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
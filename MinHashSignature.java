@@ -0,0 +1,95 @@
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//MinHash sketch of a paper's word shingles. Two sketches agree in about the same fraction of slots as the
+//Jaccard similarity of the two shingle sets. Shingles only overlap heavily between copies of the same paper,
+//so the indexer uses this to skip near-duplicates (related papers are found from their top terms instead).
+public class MinHashSignature {
+    static final int NUM_HASHES = 64;
+    static final int BANDS = 16;                            //LSH: 16 bands of 4 slots, papers sharing a band are compared
+    static final int ROWS = NUM_HASHES / BANDS;             //(about 50% overlap shares a band with good odds, 90% almost surely)
+    static final int SHINGLE_SIZE = 3;
+
+    private static final long[] SEEDS = new long[NUM_HASHES];
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    //returns null if the text has no tokens
+    public static int[] compute(Analyzer analyzer, String field, String text) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (TokenStream ts = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                words.add(term.toString());
+            }
+            ts.end();
+        }
+        if (words.isEmpty())
+            return null;
+
+        Set<String> shingles = new HashSet<>();
+        int size = Math.min(SHINGLE_SIZE, words.size());    //short titles/abstracts use fewer words per shingle
+        for (int i = 0; i + size <= words.size(); i++) {
+            shingles.add(String.join(" ", words.subList(i, i + size)));
+        }
+
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String shingle : shingles) {
+            long base = mix(shingle.hashCode());
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int h = (int) mix(base ^ SEEDS[i]);
+                if (h < signature[i])
+                    signature[i] = h;
+            }
+        }
+        return signature;
+    }
+
+    //estimated Jaccard similarity: fraction of matching slots
+    public static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i])
+                same++;
+        }
+        return (double) same / NUM_HASHES;
+    }
+
+    //one key per band, e.g. "3_5f1a..."; papers are only compared when they share a key
+    public static String[] bandTerms(int[] signature) {
+        String[] terms = new String[BANDS];
+        for (int b = 0; b < BANDS; b++) {
+            long h = b;
+            for (int r = 0; r < ROWS; r++) {
+                h = mix(h * 31 + signature[b * ROWS + r]);
+            }
+            terms[b] = b + "_" + Long.toHexString(h);
+        }
+        return terms;
+    }
+
+    //murmur3 finalizer, spreads the bits so each seed acts as an independent hash function
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
\ No newline at end of file
@@ -7,19 +7,27 @@ import org.apache.lucene.queries.spans.SpanMultiTermQueryWrapper;
 import org.apache.lucene.queries.spans.SpanNearQuery;
 import org.apache.lucene.queries.spans.SpanQuery;
 import org.apache.lucene.queries.spans.SpanTermQuery;
+import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.sandbox.search.CombinedFieldQuery;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.highlight.*;
 import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 
 import javax.swing.*;
+import java.io.IOException;
 import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static java.lang.System.exit;
 
@@ -27,6 +35,20 @@ public class SearchIndexedDocs {
     private IndexSearcher searcher;
     private IndexReader reader;
     private StoredFields storedFields; //for more efficient paging (not re-querying each page). not implemented
+    private TreeMap<Integer, Integer> resultRows = new TreeMap<>(); //list row of each result's title -> doc id, for "find similar"
+
+    //sort modes; "newest" and "quality" match the index sort (if the index was built with one) so collection stops early
+    public static final int SORT_RELEVANCE = 0;
+    public static final int SORT_NEWEST = 1;
+    public static final int SORT_QUALITY = 2;
+    public static final int SORT_RECENCY_BLEND = 3;
+    private static final float RECENCY_WEIGHT = 5.0f;          //papers from the last year get about half of this or more, on the scale of a BM25 score
+    private static final float RECENCY_EXPONENT = 16.0f;       //as of 2026: ~0.8 new, 0.5 at one year old, ~0.18 at two, ~0.04 at three, ~0 at five
+
+    //searchField value for searching title and contents together in a single query
+    public static final String BOTH_FIELDS = "title+contents";
+    private static final String[] COMBINED_FIELDS = {"title", "contents"};
+    private static final float[] COMBINED_WEIGHTS = {3.0f, 1.0f};        //a title hit counts like three contents hits; weights must be >= 1
 
     public SearchIndexedDocs(String index) throws Exception {
         Directory indexDir = FSDirectory.open(Paths.get(index));
@@ -34,6 +56,7 @@ public class SearchIndexedDocs {
         searcher = new IndexSearcher(reader);                 //current Lucene uses BM25 similarity by default
         //searcher.setSimilarity(new ClassicSimilarity());    // Can use TF-IDF similarity instead, but they recommend BM25
         IndexSearcher.setMaxClauseCount(65536);               //up from 1024, can be slow; wilcards create many clauses
+        storedFields = searcher.storedFields();
     }
 
     public Query basicSearch(String userQuery, String field) throws Exception {
@@ -51,9 +74,142 @@ public class SearchIndexedDocs {
         return query;
     }
 
-    public void search(String userQuery, DefaultListModel<String> listModel, String searchField, int currentPage, int resultsPerPage, int curOption, Boolean matchCase) throws Exception {
+    //builds the query for one field, used to run a parser construct once per combined field
+    private interface FieldQueryBuilder {
+        Query build(String field) throws ParseException;
+    }
+
+    //combinedSearch: BM25F style; each term's title and contents postings are merged and scored as one field,
+    //so the term is walked once instead of once per field. quoted phrases and wildcard/prefix/fuzzy/regexp/range
+    //terms can't be merged that way, so they fall back to a weighted per-field disjunction
+    public Query combinedSearch(String userQuery) throws Exception {
+        QueryParser parser = new QueryParser("contents", new StandardAnalyzer()) {
+            private boolean perField = false;                            //true while building one field of a disjunction
+
+            @Override
+            protected Query newTermQuery(Term term, float boost) {
+                if (perField || !term.field().equals("contents"))       //user typed an explicit field e.g. title:foo
+                    return super.newTermQuery(term, boost);
+                return combinedTermQuery(term.bytes());
+            }
+
+            @Override
+            protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+                if (perField || !quoted || !field.equals("contents"))
+                    return super.getFieldQuery(field, queryText, quoted);
+                return perFieldQuery(f -> super.getFieldQuery(f, queryText, true));
+            }
+
+            @Override
+            protected Query getFieldQuery(String field, String queryText, int slop) throws ParseException {
+                if (perField || !field.equals("contents"))              //e.g. "search string here"~1, slop goes on each field's phrase
+                    return super.getFieldQuery(field, queryText, slop);
+                return perFieldQuery(f -> super.getFieldQuery(f, queryText, slop));
+            }
+
+            @Override
+            protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+                if (!field.equals("contents"))
+                    return super.getWildcardQuery(field, termStr);
+                return perFieldQuery(f -> super.getWildcardQuery(f, termStr));
+            }
+
+            @Override
+            protected Query getPrefixQuery(String field, String termStr) throws ParseException {
+                if (!field.equals("contents"))
+                    return super.getPrefixQuery(field, termStr);
+                return perFieldQuery(f -> super.getPrefixQuery(f, termStr));
+            }
+
+            @Override
+            protected Query getFuzzyQuery(String field, String termStr, float minSimilarity) throws ParseException {
+                if (!field.equals("contents"))
+                    return super.getFuzzyQuery(field, termStr, minSimilarity);
+                return perFieldQuery(f -> super.getFuzzyQuery(f, termStr, minSimilarity));
+            }
+
+            @Override
+            protected Query getRegexpQuery(String field, String termStr) throws ParseException {
+                if (!field.equals("contents"))
+                    return super.getRegexpQuery(field, termStr);
+                return perFieldQuery(f -> super.getRegexpQuery(f, termStr));
+            }
+
+            @Override
+            protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive, boolean endInclusive) throws ParseException {
+                if (!field.equals("contents"))
+                    return super.getRangeQuery(field, part1, part2, startInclusive, endInclusive);
+                return perFieldQuery(f -> super.getRangeQuery(f, part1, part2, startInclusive, endInclusive));
+            }
+
+            //same weighting as CombinedFieldQuery, but each field is matched and scored on its own
+            private Query perFieldQuery(FieldQueryBuilder builder) throws ParseException {
+                BooleanQuery.Builder bqBuilder = new BooleanQuery.Builder();
+                perField = true;                                         //so a quoted single word stays a plain term query
+                try {
+                    for (int i = 0; i < COMBINED_FIELDS.length; i++) {
+                        Query fieldQuery = builder.build(COMBINED_FIELDS[i]);
+                        if (fieldQuery != null)
+                            bqBuilder.add(new BoostQuery(fieldQuery, COMBINED_WEIGHTS[i]), BooleanClause.Occur.SHOULD);
+                    }
+                } finally {
+                    perField = false;
+                }
+                return bqBuilder.build();
+            }
+        };
+        return parser.parse(userQuery);
+    }
+
+    private static Query combinedTermQuery(BytesRef term) {
+        CombinedFieldQuery.Builder cfBuilder = new CombinedFieldQuery.Builder();
+        for (int i = 0; i < COMBINED_FIELDS.length; i++) {
+            cfBuilder.addField(COMBINED_FIELDS[i], COMBINED_WEIGHTS[i]);
+        }
+        cfBuilder.addTerm(term);
+        return cfBuilder.build();
+    }
+
+    //the phrase searches need positions from a single field, so both field versions go into one weighted boolean query
+    private static Query combinedPhrase(String userQuery, int curOption) throws Exception {
+        BooleanQuery.Builder bqBuilder = new BooleanQuery.Builder();
+        for (int i = 0; i < COMBINED_FIELDS.length; i++) {
+            Query fieldQuery = buildPhraseQuery(userQuery, COMBINED_FIELDS[i], curOption);
+            bqBuilder.add(new BoostQuery(fieldQuery, COMBINED_WEIGHTS[i]), BooleanClause.Occur.SHOULD);
+        }
+        return bqBuilder.build();
+    }
+
+    //buildQuery: input is assumed to be lowercased and already checked for the option (see search)
+    public Query buildQuery(String userQuery, String searchField, int curOption) throws Exception {
+        boolean combined = searchField.equals(BOTH_FIELDS);
+        if (curOption == 0)
+            return combined ? combinedSearch(userQuery) : basicSearch(userQuery, searchField);
+        return combined ? combinedPhrase(userQuery, curOption) : buildPhraseQuery(userQuery, searchField, curOption);
+    }
+
+    private static Query buildPhraseQuery(String userQuery, String field, int curOption) {
+        switch (curOption) {
+            case 1:
+                return partialPhrase(userQuery, field);
+            case 2:
+                return wildPhrase(userQuery, field);
+            case 3:
+                return gapPhrase(userQuery, field);
+            case 4:
+                return knownGapPhrase(userQuery, field);
+        }
+        return null;
+    }
+
+    public IndexSearcher getSearcher() {
+        return searcher;
+    }
+
+    public void search(String userQuery, DefaultListModel<String> listModel, String searchField, int currentPage, int resultsPerPage, int curOption, Boolean matchCase, int sortMode) throws Exception {
         int newPage = currentPage * resultsPerPage;
         Query query = null;
+        resultRows.clear();
         System.out.println(curOption);
         if (userQuery.equals("")) {
             listModel.addElement("Search string is empty.");
@@ -61,38 +217,29 @@ public class SearchIndexedDocs {
         }
         userQuery = userQuery.toLowerCase(); //to match the analyzer's lowerCase filter used in index builder
         switch (curOption) {
-            case 0:
-                query = basicSearch(userQuery, searchField);
-                break;
             case 1:
-                if (!userQuery.contains(" ")) {
-                    listModel.addElement("Phrase search requires two words.");
-                    return;
-                }
-                query = partialPhrase(userQuery, searchField);
-                break;
             case 2:
-                if (!userQuery.contains(" ")) {
-                    listModel.addElement("Phrase search requires two words.");
-                    return;
-                }
-                query = wildPhrase(userQuery, searchField);
-                break;
             case 3:
                 if (!userQuery.contains(" ")) {
                     listModel.addElement("Phrase search requires two words.");
                     return;
                 }
-                query = gapPhrase(userQuery, searchField);
                 break;
             case 4:
                 if (!userQuery.contains(" ? ")) {
                     listModel.addElement("Invalid search.");
                     return;
                 }
-                query = knownGapPhrase(userQuery, searchField);
                 break;
         }
+        query = buildQuery(userQuery, searchField, curOption);
+        Query highlightQuery = query;
+        String displayField = searchField;
+        if (searchField.equals(BOTH_FIELDS)) {
+            displayField = "contents";                               //show the contents snippet, title is already listed
+            if (curOption == 0)
+                highlightQuery = basicSearch(userQuery, displayField); //highlighter can't extract terms from CombinedFieldQuery
+        }
         if (query == null) {
             System.out.println("Problem.");
             exit(-1);
@@ -102,7 +249,10 @@ public class SearchIndexedDocs {
         TopDocs results = null;
 
         try {
-            results = searcher.search(query, newPage + resultsPerPage);
+            float recencyWeight = RECENCY_WEIGHT;
+            if (curOption == 1)
+                recencyWeight *= partialPhraseScale(userQuery);      //partialPhrase boosts its phrases into the hundreds
+            results = sortedSearch(query, newPage + resultsPerPage, sortMode, recencyWeight);
         } catch (
                 IndexSearcher.TooManyClauses e) {         //seems to trigger when using wildcard on a simple prefix/suffix e.g. "a* or *a"
             System.out.println("Too many clauses.");
@@ -121,20 +271,25 @@ public class SearchIndexedDocs {
                 Document doc = searcher.doc(hits[i].doc);
                 String path = doc.get("path");
                 System.out.println((i + 1) + ". " + path);
-                String title = doc.get("title").replaceAll("[^a-zA-Z0-9 ]", "").replaceAll("\\s+", " ").trim(); //trying to clean up the title text a bit
+                String title = cleanTitle(doc.get("title"));
+                IndexableField date = doc.getField("date");
+                if (date != null) {
+                    title += " (" + Instant.ofEpochMilli(date.numericValue().longValue()).toString().substring(0, 10) + ")";
+                }
+                resultRows.put(listModel.size(), hits[i].doc);
                 if (title != null) {
                     listModel.addElement(String.format("%d. Title: ", i + 1) + title);
                 } else {
                     listModel.addElement("Title: No title");
                 }
-                String content = doc.get(searchField);
-                if (doc.get(searchField) != null) {
+                String content = doc.get(displayField);
+                if (doc.get(displayField) != null) {
 
                     Fields vector = termVectors.get(hits[i].doc);   //this is all to report exactly which terms in the search results were hit
-                    QueryScorer s = new QueryScorer(query);
+                    QueryScorer s = new QueryScorer(highlightQuery, displayField);
                     Formatter f = new SimpleHTMLFormatter("<font style=\"color:red\">","</font>");
                     Highlighter h = new Highlighter(f, s);
-                    TokenStream ts = TokenSources.getTermVectorTokenStreamOrNull(searchField, vector, h.getMaxDocCharsToAnalyze() - 1);
+                    TokenStream ts = TokenSources.getTermVectorTokenStreamOrNull(displayField, vector, h.getMaxDocCharsToAnalyze() - 1);
                     String fragment = h.getBestFragment(ts, content);
 
                     if (fragment != null) {
@@ -149,6 +304,90 @@ public class SearchIndexedDocs {
         }
     }
 
+    private static String cleanTitle(String title) {
+        return title.replaceAll("[^a-zA-Z0-9 ]", "").replaceAll("\\s+", " ").trim(); //trying to clean up the title text a bit
+    }
+
+    //doc id of the result that the given list row belongs to, or -1
+    public int getDocForRow(int row) {
+        Map.Entry<Integer, Integer> entry = resultRows.floorEntry(row);
+        return entry == null ? -1 : entry.getValue();
+    }
+
+    //findSimilar: "more like this" from the paper's top tf-idf terms, which the indexer precomputed and stored as doc values.
+    //each term is searched over title and contents together, boosted by its weight. the paper's text is never re-analyzed
+    public void findSimilar(int docId, DefaultListModel<String> listModel, int currentPage, int resultsPerPage) throws Exception {
+        int newPage = currentPage * resultsPerPage;
+        String topTerms = getTopTerms(docId);
+        String sourceTitle = cleanTitle(storedFields.document(docId).get("title"));
+        resultRows.clear();
+        if (topTerms == null || topTerms.isEmpty()) {
+            listModel.addElement("No key terms stored for this paper, rebuild the index to use Find Similar.");
+            return;
+        }
+
+        BooleanQuery.Builder bqBuilder = new BooleanQuery.Builder();
+        List<String> terms = new ArrayList<>();
+        float maxWeight = 0;
+        for (String line : topTerms.split("\n")) {                   //"term<tab>weight", heaviest first
+            String[] parts = line.split("\t");
+            float weight = Float.parseFloat(parts[1]);
+            if (terms.isEmpty())
+                maxWeight = weight;
+            terms.add(parts[0]);
+            bqBuilder.add(new BoostQuery(combinedTermQuery(new BytesRef(parts[0])), weight / maxWeight), BooleanClause.Occur.SHOULD);
+        }
+        TopDocs results = searcher.search(bqBuilder.build(), newPage + resultsPerPage + 1);   //+1: the paper itself usually comes first
+
+        listModel.addElement("Papers similar to: " + sourceTitle);
+        listModel.addElement("Key terms: " + String.join(", ", terms.subList(0, Math.min(10, terms.size()))));
+        listModel.addElement("");
+        int rank = 0;
+        for (ScoreDoc hit : results.scoreDocs) {
+            if (hit.doc == docId)
+                continue;
+            rank++;
+            if (rank <= newPage || rank > newPage + resultsPerPage)
+                continue;
+            Document doc = storedFields.document(hit.doc);
+            System.out.println(rank + ". " + doc.get("path"));
+            resultRows.put(listModel.size(), hit.doc);
+            listModel.addElement(String.format("%d. Title: ", rank) + cleanTitle(doc.get("title")));
+            listModel.addElement("");
+        }
+        if (rank <= newPage)
+            listModel.addElement("No similar papers found.");
+    }
+
+    private String getTopTerms(int docId) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        BinaryDocValues values = leaf.reader().getBinaryDocValues("topTerms");
+        if (values == null || !values.advanceExact(docId - leaf.docBase))
+            return null;
+        return values.binaryValue().utf8ToString();
+    }
+
+    //sortedSearch: newest and quality reuse the indexer's Sort, when it matches the index sort lucene stops after the top-k of each segment
+    //otherwise the LongPoint on the same field lets it skip documents that can't compete. The recency blend adds a FeatureField
+    //clause, whose impacts let block-max WAND skip blocks of documents that can't make it into the top-k
+    private TopDocs sortedSearch(Query query, int n, int sortMode, float recencyWeight) throws Exception {
+        switch (sortMode) {
+            case SORT_NEWEST:
+                return searcher.search(query, n, IndexAllFilesInDirectory.getIndexSort("date"));
+            case SORT_QUALITY:
+                return searcher.search(query, n, IndexAllFilesInDirectory.getIndexSort("quality")); //ties broken by newest
+            case SORT_RECENCY_BLEND:
+                long pivotDays = IndexAllFilesInDirectory.recencyDays(LocalDate.now().minusYears(1).toEpochDay() * 86400000L);
+                BooleanQuery.Builder bqBuilder = new BooleanQuery.Builder();
+                bqBuilder.add(query, BooleanClause.Occur.MUST);
+                bqBuilder.add(FeatureField.newSigmoidQuery("features", "recency", recencyWeight, pivotDays, RECENCY_EXPONENT), BooleanClause.Occur.SHOULD);
+                return searcher.search(bqBuilder.build(), n);
+            default:
+                return searcher.search(query, n);
+        }
+    }
+
     //gapPhrase: (proximity search) keep order but possibly missing one word somewhere
     // e.g. "The quick fox jumped" --> "The quick [brown] fox jumped"
     private static Query gapPhrase(String userQuery, String field) {
@@ -242,6 +481,12 @@ public class SearchIndexedDocs {
         return result;
     }
 
+    //boost partialPhrase gives its best two-word phrase, used to bring the recency blend up to the same scale
+    private static float partialPhraseScale(String userQuery) {
+        int words = userQuery.split("\\s+").length;
+        return (float) (Math.pow(words + 5, 2) + Math.pow(words + 4, 2));
+    }
+
     //recursively find all order-preserving permutations of the user's query; e.g "a b c d", "a b c", "a c d", "c d", etc
     private static List<List<String>> getStringCombinations(String[] stringList) {
         List<List<String>> result = new ArrayList<>();